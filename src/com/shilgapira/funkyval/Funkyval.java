@@ -35,7 +35,19 @@ public abstract class Funkyval {
      * precedence atm, so complex expressions need liberal amounts of parenthesis.
      */
     public static Funkyval fromExpression(String expression) {
-        return buildFunkyval(expression);
+        return buildFunkyval(expression, false);
+    }
+    
+    /**
+     * Builds a {@code Funkyval} object from an expression. If {@code adaptive} is set
+     * the equality and boolean operators ("==", "!=", "&&", "||", "!") keep track of
+     * the kinds of values they see, and ones that keep seeing the same kind switch to
+     * a faster path for it. They switch back when the value kind changes, so the results
+     * are always the same as without it. Arithmetic and comparison operators aren't
+     * affected.
+     */
+    public static Funkyval fromExpression(String expression, boolean adaptive) {
+        return buildFunkyval(expression, adaptive);
     }
     
     //
@@ -45,7 +57,27 @@ public abstract class Funkyval {
     public abstract String evaluateString(Map<String, String> variables);
     
     public int evaluateInteger(Map<String, String> variables) {
-        String evaluation = evaluateString(variables);
+        return parseInteger(evaluateString(variables));
+    }
+    
+    public boolean evaluateBoolean(Map<String, String> variables) {
+        return parseBoolean(evaluateString(variables));
+    }
+    
+    public void perform(Map<String, String> variables) {
+        evaluateString(variables);
+    }
+    
+    static int parseInteger(String evaluation) {
+        // values that can't be numbers are common, e.g., "door < 8", so skip
+        // them here since throwing is much slower than parsing
+        if (evaluation.length() == 0) {
+            return 0;
+        }
+        char c = evaluation.charAt(0);
+        if (c != '-' && c != '+' && !Character.isDigit(c)) {
+            return 0;
+        }
         try {
             return Integer.parseInt(evaluation);
         } catch (NumberFormatException e) {
@@ -53,17 +85,12 @@ public abstract class Funkyval {
         }
     }
     
-    public boolean evaluateBoolean(Map<String, String> variables) {
-        String evaluation = evaluateString(variables);
+    static boolean parseBoolean(String evaluation) {
         return (evaluation.equalsIgnoreCase("1") || 
                 evaluation.equalsIgnoreCase("yes") || 
                 evaluation.equalsIgnoreCase("true"));
     }
     
-    public void perform(Map<String, String> variables) {
-        evaluateString(variables);
-    }
-    
     //
     // Null placeholder
     //
@@ -80,7 +107,7 @@ public abstract class Funkyval {
     // Builder
     //
     
-    private static Funkyval buildFunkyval(String expression) {
+    private static Funkyval buildFunkyval(String expression, boolean adaptive) {
         if (expression == null) {
             return NULL;
         }
@@ -88,20 +115,20 @@ public abstract class Funkyval {
             String[] strings = expression.split(",");
             List<Funkyval> funkyvals = new LinkedList<Funkyval>();
             for (String string : strings) {
-                funkyvals.add(buildFromString(string));
+                funkyvals.add(buildFromString(string, adaptive));
             }
             return new GroupFunkyval(funkyvals);
         } else {
-            return buildFromString(expression);
+            return buildFromString(expression, adaptive);
         }
     }
     
-    private static Funkyval buildFromString(String string) {
+    private static Funkyval buildFromString(String string, boolean adaptive) {
         char[] chars = string.toCharArray();
-        return buildFromSubstring(chars, 0, chars.length);
+        return buildFromSubstring(chars, 0, chars.length, adaptive);
     }
     
-    private static Funkyval buildFromSubstring(char[] chars, int start, int end) {
+    private static Funkyval buildFromSubstring(char[] chars, int start, int end, boolean adaptive) {
         Funkyval[] funks = new Funkyval[3];
         int count = 0;
         
@@ -147,7 +174,7 @@ public abstract class Funkyval {
                     if (depth == 0) {
                         // some sanity checking
                         if (substart < i) {
-                            funks[count] = buildFromSubstring(chars, substart, i);
+                            funks[count] = buildFromSubstring(chars, substart, i, adaptive);
                             count++;
                         }
                         break;
@@ -169,7 +196,9 @@ public abstract class Funkyval {
                     }
                 }
                 
-                funks[count] = new OperatorFunkyval(valueBuilder.toString());
+                OperatorFunkyval op = new OperatorFunkyval(valueBuilder.toString());
+                op.setAdaptive(adaptive);
+                funks[count] = op;
                 count++;
             }
         }
@@ -0,0 +1,168 @@
+package com.shilgapira.funkyval;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Holds a named set of {@code Funkyval} objects, such as a bundle of rules received
+ * from a web service, and allows replacing them while other threads are evaluating.</p>
+ *
+ * <p>Each call to {@link #publish(Map)} diffs the expressions against the ones currently
+ * loaded, builds only those that are new or changed, and then swaps in a new immutable
+ * {@link Version} in one step. Readers never lock, and a reader holding a {@code Version}
+ * keeps seeing the same rules until it asks for a new one. The version that was replaced
+ * is kept around so it can be restored with {@link #rollback()}.</p>
+ *
+ * @author Gil Shapira
+ */
+public class FunkyvalRegistry {
+
+    private volatile Version mCurrent;
+
+    private Version mPrevious;
+
+    private int mLastNumber;
+
+
+    public FunkyvalRegistry() {
+        mCurrent = new Version(0, new HashMap<String, Entry>());
+    }
+
+    //
+    // Reading
+    //
+
+    /**
+     * Returns the currently published version. Use this when several rules need to be
+     * evaluated against the same version.
+     */
+    public Version getVersion() {
+        return mCurrent;
+    }
+
+    /**
+     * Returns the rule with this name in the current version, or {@code null} if there's
+     * no such rule.
+     */
+    public Funkyval get(String name) {
+        return mCurrent.get(name);
+    }
+
+    //
+    // Publishing
+    //
+
+    /**
+     * Publishes a new version made up of exactly these named expressions. Rules whose
+     * expression text hasn't changed are carried over as is, rules that are missing
+     * from {@code expressions} are dropped. If nothing changed the current version is
+     * kept and returned.
+     */
+    public synchronized Version publish(Map<String, String> expressions) {
+        Version current = mCurrent;
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        boolean changed = (expressions.size() != current.mEntries.size());
+
+        for (Map.Entry<String, String> expression : expressions.entrySet()) {
+            String name = expression.getKey();
+            String text = expression.getValue();
+
+            Entry entry = current.mEntries.get(name);
+            if (entry == null || !equal(entry.mExpression, text)) {
+                entry = new Entry(text, Funkyval.fromExpression(text));
+                changed = true;
+            }
+            entries.put(name, entry);
+        }
+
+        if (!changed) {
+            return current;
+        }
+
+        Version version = new Version(++mLastNumber, entries);
+        mPrevious = current;
+        mCurrent = version;
+        return version;
+    }
+
+    /**
+     * Restores the version that was current before the last {@link #publish(Map)}.
+     * Only a single previous version is kept, so calling this again without publishing
+     * in between does nothing.
+     *
+     * @return whether a previous version was restored
+     */
+    public synchronized boolean rollback() {
+        if (mPrevious == null) {
+            return false;
+        }
+        mCurrent = mPrevious;
+        mPrevious = null;
+        return true;
+    }
+
+    private static boolean equal(String a, String b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+    //
+    // Versions
+    //
+
+    /**
+     * An immutable snapshot of the registry's rules.
+     */
+    public static class Version {
+
+        private final int mNumber;
+
+        private final Map<String, Entry> mEntries;
+
+
+        private Version(int number, Map<String, Entry> entries) {
+            mNumber = number;
+            mEntries = entries;
+        }
+
+        /**
+         * Returns the version number, which starts at 0 for an empty registry and is
+         * incremented by every {@code publish} that changes something. Numbers aren't
+         * reused after a rollback.
+         */
+        public int getNumber() {
+            return mNumber;
+        }
+
+        public Set<String> getNames() {
+            return Collections.unmodifiableSet(mEntries.keySet());
+        }
+
+        public Funkyval get(String name) {
+            Entry entry = mEntries.get(name);
+            return (entry != null) ? entry.mFunkyval : null;
+        }
+
+        public String getExpression(String name) {
+            Entry entry = mEntries.get(name);
+            return (entry != null) ? entry.mExpression : null;
+        }
+
+    }
+
+    private static class Entry {
+
+        final String mExpression;
+
+        final Funkyval mFunkyval;
+
+
+        Entry(String expression, Funkyval funkyval) {
+            mExpression = expression;
+            mFunkyval = funkyval;
+        }
+
+    }
+
+}
@@ -17,6 +17,18 @@ public class OperatorFunkyval extends Funkyval {
     
     private Funkyval mRight;
     
+    private boolean mAdaptive;
+    
+    private Specialization mSpecialization = Specialization.GENERIC;
+    
+    private Specialization mProfiled = Specialization.GENERIC;
+    
+    private int mProfileCount;
+    
+    private int mProfileTotal;
+    
+    private int mDeoptCount;
+    
     
     public OperatorFunkyval(String operator) {
         this(sOperatorStrings.get(operator));
@@ -39,6 +51,22 @@ public class OperatorFunkyval extends Funkyval {
         mRight = right;
     }
     
+    /**
+     * Whether to profile the values seen by this operator and specialize for them.
+     * See {@link Funkyval#fromExpression(String, boolean)}.
+     */
+    public void setAdaptive(boolean adaptive) {
+        mAdaptive = adaptive;
+    }
+    
+    boolean isAdaptive() {
+        return mAdaptive;
+    }
+    
+    Specialization getSpecialization() {
+        return mSpecialization;
+    }
+    
     @Override
     public String evaluateString(Map<String, String> variables) {
         if (mLeft == Funkyval.NULL && mRight == Funkyval.NULL) {
@@ -53,8 +81,10 @@ public class OperatorFunkyval extends Funkyval {
             case MULTASSIGN:
             case DIVASSIGN:
             case MODASSIGN:
-                convertComplexOperator();
-                // fall down to evaluate assign after conversion
+                String compoundResult = evalCompoundAssign(variables);
+                // Log.d(TAG, mOperator.name() + ", Result (S):" + compoundResult); 
+                return compoundResult;
+                
             case ASSIGN:
                 String assignResult = evalAssign(variables);
                 // Log.d(TAG, mOperator.name() + ", Result (S):" + assignResult); 
@@ -98,6 +128,63 @@ public class OperatorFunkyval extends Funkyval {
     private String evalAssign(Map<String, String> variables) {
         String rightValue = mRight.evaluateString(variables);
         // Log.d(TAG, mOperator.name() + ", Right (S): " + rightValue); 
+        return assign(variables, rightValue);
+    }
+    
+    /**
+     * Evaluates "a += 5" as "a = (a + 5)" and "a++" as "a = (a + 1)", without
+     * changing the tree so it can be evaluated from several threads.
+     */
+    private String evalCompoundAssign(Map<String, String> variables) {
+        int left = mLeft.evaluateInteger(variables);
+        int right;
+        Operator suboperator;
+        
+        switch (mOperator) {
+            case PLUSPLUS:
+                suboperator = Operator.PLUS;
+                right = 1;
+                break;
+                
+            case MINUSMINUS:
+                suboperator = Operator.MINUS;
+                right = 1;
+                break;
+                
+            case PLUSASSIGN:
+                suboperator = Operator.PLUS;
+                right = mRight.evaluateInteger(variables);
+                break;
+                
+            case MINUSASSIGN:
+                suboperator = Operator.MINUS;
+                right = mRight.evaluateInteger(variables);
+                break;
+                
+            case MULTASSIGN:
+                suboperator = Operator.MULT;
+                right = mRight.evaluateInteger(variables);
+                break;
+                
+            case DIVASSIGN:
+                suboperator = Operator.DIV;
+                right = mRight.evaluateInteger(variables);
+                break;
+                
+            case MODASSIGN:
+                suboperator = Operator.MOD;
+                right = mRight.evaluateInteger(variables);
+                break;
+                
+            default:
+                return Funkyval.NULL.evaluateString(variables);
+        }
+        
+        String value = String.valueOf(calculate(suboperator, left, right));
+        return assign(variables, value);
+    }
+    
+    private String assign(Map<String, String> variables, String rightValue) {
         // use left side of the assignment as an lvalue
         if (mLeft instanceof ValueFunkyval) {
             ValueFunkyval left = (ValueFunkyval) mLeft;
@@ -115,7 +202,11 @@ public class OperatorFunkyval extends Funkyval {
         int right = mRight.evaluateInteger(variables);
         // Log.d(TAG, mOperator.name() + ", Left (I): " + left); 
         // Log.d(TAG, mOperator.name() + ", Right (I): " + right); 
-        switch (mOperator) {
+        return calculate(mOperator, left, right);
+    }
+    
+    private static int calculate(Operator operator, int left, int right) {
+        switch (operator) {
             case PLUS: return left + right;
             case MINUS: return left - right;
             case MULT: return left * right;
@@ -131,20 +222,37 @@ public class OperatorFunkyval extends Funkyval {
         // Log.d(TAG, mOperator.name() + ", Left (S): " + ls); 
         // Log.d(TAG, mOperator.name() + ", Right (S): " + rs);
         
-        if (ls.equalsIgnoreCase("yes") || ls.equalsIgnoreCase("true")) {
-            ls = "1";
-        }
-        if (rs.equalsIgnoreCase("yes") || rs.equalsIgnoreCase("true")) {
-            rs = "1";
+        boolean cs;
+        if (mSpecialization == Specialization.STRING && !mayBeTrue(ls) && !mayBeTrue(rs)) {
+            // neither side needs to be normalized
+            cs = ls.equalsIgnoreCase(rs);
+        } else {
+            if (mSpecialization == Specialization.STRING) {
+                deoptimize();
+            }
+            
+            cs = evalEqualGeneric(ls, rs);
+            if (isProfiling()) {
+                profile(!mayBeTrue(ls) && !mayBeTrue(rs) ? Specialization.STRING : Specialization.GENERIC);
+            }
         }
         
-        boolean cs = ls.equalsIgnoreCase(rs);
         if (mOperator == Operator.NOTEQUALS) {
             cs = !cs;
         }
         return cs;
     }
     
+    private static boolean evalEqualGeneric(String ls, String rs) {
+        if (ls.equalsIgnoreCase("yes") || ls.equalsIgnoreCase("true")) {
+            ls = "1";
+        }
+        if (rs.equalsIgnoreCase("yes") || rs.equalsIgnoreCase("true")) {
+            rs = "1";
+        }
+        return ls.equalsIgnoreCase(rs);
+    }
+    
     private boolean evalCompare(Map<String, String> variables) {
         int li = mLeft.evaluateInteger(variables);
         int ri = mRight.evaluateInteger(variables);
@@ -162,13 +270,21 @@ public class OperatorFunkyval extends Funkyval {
     }
     
     private boolean evalBoolean(Map<String, String> variables) {
-        boolean right = mRight.evaluateBoolean(variables);
+        String rs = mRight.evaluateString(variables);
+        boolean right = toBoolean(rs);
         // Log.d(TAG, mOperator.name() + ", Right (B): " + right); 
         if (mOperator == Operator.NOT) {
+            if (isProfiling()) {
+                profile(isBit(rs) ? Specialization.BOOLEAN : Specialization.GENERIC);
+            }
             return !right;
         } else {
-            boolean left = mLeft.evaluateBoolean(variables);
+            String ls = mLeft.evaluateString(variables);
+            boolean left = toBoolean(ls);
             // Log.d(TAG, mOperator.name() + ", Left (B): " + left); 
+            if (isProfiling()) {
+                profile(isBit(ls) && isBit(rs) ? Specialization.BOOLEAN : Specialization.GENERIC);
+            }
             if (mOperator == Operator.AND) {
                 return right && left;
             } else {
@@ -177,56 +293,81 @@ public class OperatorFunkyval extends Funkyval {
         }
     }
     
-    private void convertComplexOperator() {
-        Operator suboperator;
-        Funkyval subright;
-
-        switch (mOperator) {
-            case PLUSPLUS:
-                suboperator = Operator.PLUS;
-                subright = new ValueFunkyval("1");
-                break;
-                
-            case MINUSMINUS:
-                suboperator = Operator.MINUS;
-                subright = new ValueFunkyval("1");
-                break;
-                
-            case PLUSASSIGN:
-                suboperator = Operator.PLUS;
-                subright = mRight;
-                break;
-                
-            case MINUSASSIGN:
-                suboperator = Operator.MINUS;
-                subright = mRight;
-                break;
-                
-            case MULTASSIGN:
-                suboperator = Operator.MULT;
-                subright = mRight;
-                break;
-                
-            case DIVASSIGN:
-                suboperator = Operator.DIV;
-                subright = mRight;
-                break;
-                
-            case MODASSIGN:
-                suboperator = Operator.MOD;
-                subright = mRight;
-                break;
-                
-            default:
-                mOperator = Operator.NOOP;
-                return;
+    //
+    // Specialization
+    //
+    
+    /**
+     * Converts an operand to a boolean, taking the shortcut if this operator is
+     * specialized for booleans and deoptimizing if the operand isn't "0" or "1".
+     */
+    private boolean toBoolean(String value) {
+        if (mSpecialization == Specialization.BOOLEAN) {
+            if (isBit(value)) {
+                return value.charAt(0) == '1';
+            }
+            deoptimize();
+        }
+        return Funkyval.parseBoolean(value);
+    }
+    
+    private boolean isProfiling() {
+        return mAdaptive && mSpecialization == Specialization.GENERIC;
+    }
+    
+    /**
+     * Records the kind of operands seen in the last evaluation, and specializes once
+     * the same kind has been seen enough times in a row. Operators that don't settle
+     * on a kind within {@link #PROFILE_LIMIT} evaluations stop profiling. The profiling
+     * state isn't synchronized, concurrent evaluations can at worst lose some counts
+     * since every specialized path checks its operands anyway.
+     */
+    private void profile(Specialization observed) {
+        if (observed != mProfiled) {
+            mProfiled = observed;
+            mProfileCount = 0;
+        }
+        mProfileCount++;
+        mProfileTotal++;
+        if (mProfileCount >= SPECIALIZE_THRESHOLD && observed != Specialization.GENERIC) {
+            mSpecialization = observed;
+        } else if (mProfileTotal >= PROFILE_LIMIT) {
+            mAdaptive = false;
         }
-        
-        mOperator = Operator.ASSIGN;
-        OperatorFunkyval right = new OperatorFunkyval(suboperator);
-        right.setLeft(mLeft);
-        right.setRight(subright);
-        mRight = right;
+    }
+    
+    /**
+     * Goes back to the generic path after a specialized operator sees an operand it
+     * can't handle. Operators that keep flip-flopping stop profiling altogether.
+     */
+    private void deoptimize() {
+        mSpecialization = Specialization.GENERIC;
+        mProfiled = Specialization.GENERIC;
+        mProfileCount = 0;
+        mProfileTotal = 0;
+        mDeoptCount++;
+        if (mDeoptCount >= MAX_DEOPTS) {
+            mAdaptive = false;
+        }
+    }
+    
+    private static boolean isBit(String value) {
+        if (value.length() != 1) {
+            return false;
+        }
+        char c = value.charAt(0);
+        return (c == '0' || c == '1');
+    }
+    
+    /**
+     * Whether the value might be "yes" or "true", which {@code evalEqual} treats as "1".
+     */
+    private static boolean mayBeTrue(String value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        char c = value.charAt(0);
+        return (c == 'y' || c == 'Y' || c == 't' || c == 'T');
     }
     
     //
@@ -273,5 +414,24 @@ public class OperatorFunkyval extends Funkyval {
             sOperatorStrings.put(op.mKey, op);
         }
     }
+    
+    //
+    // Specializations
+    //
+    
+    enum Specialization {
+        /** Operands are evaluated as usual */
+        GENERIC,
+        /** Operands are "0" or "1", e.g., the result of a comparison */
+        BOOLEAN,
+        /** Operands can't be "yes" or "true", so they don't need to be normalized */
+        STRING,
+    }
+    
+    static final int SPECIALIZE_THRESHOLD = 1000;
+    
+    static final int PROFILE_LIMIT = 4 * SPECIALIZE_THRESHOLD;
+    
+    static final int MAX_DEOPTS = 4;
 
 }
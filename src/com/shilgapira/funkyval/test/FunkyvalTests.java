@@ -7,6 +7,9 @@ import org.junit.*;
 import static org.junit.Assert.*;
 
 import com.shilgapira.funkyval.Funkyval;
+import com.shilgapira.funkyval.FunkyvalRegistry;
+import com.shilgapira.funkyval.OperatorFunkyval;
+import com.shilgapira.funkyval.ValueFunkyval;
 
 public class FunkyvalTests {
     
@@ -127,6 +130,22 @@ public class FunkyvalTests {
         assertFalse(        fb("(door * 1000) <= 100")                  );
     }
     
+    @Test
+    public void testCompound() {
+        OperatorFunkyval op = new OperatorFunkyval("+=");
+        op.setLeft(new ValueFunkyval("number"));
+        op.setRight(new ValueFunkyval("2"));
+        assertEquals(       op.evaluateInteger(v)                   , 10    );
+        assertEquals(       op.evaluateInteger(v)                   , 12    );
+        assertEquals(       fi("number")                            , 12    );
+        
+        OperatorFunkyval dec = new OperatorFunkyval("--");
+        dec.setLeft(new ValueFunkyval("number"));
+        assertEquals(       dec.evaluateInteger(v)                  , 11    );
+        assertEquals(       fi("number--")                          , 10    );
+        assertEquals(       fi("number /= 5")                       , 2     );
+    }
+    
     @Test
     public void testGroup() {
         assertTrue(         fb("number == 8, number++, number == 11")   );
@@ -134,4 +153,40 @@ public class FunkyvalTests {
         assertTrue(         fb("number == 800")                         );
     }
     
+    @Test
+    public void testRegistry() {
+        FunkyvalRegistry registry = new FunkyvalRegistry();
+        assertEquals(       registry.getVersion().getNumber()       , 0     );
+        assertNull(         registry.get("valid")                       );
+        
+        Map<String, String> rules = new HashMap<String, String>();
+        rules.put("valid", "number > 5");
+        rules.put("asleep", "sleeping");
+        FunkyvalRegistry.Version first = registry.publish(rules);
+        assertEquals(       first.getNumber()                       , 1     );
+        assertTrue(         registry.get("valid").evaluateBoolean(v)    );
+        assertTrue(         registry.get("asleep").evaluateBoolean(v)   );
+        
+        // same text, nothing to publish
+        assertSame(         registry.publish(rules)                 , first );
+        
+        // unchanged rules are carried over, changed ones are rebuilt
+        Funkyval asleep = registry.get("asleep");
+        rules.put("valid", "number > 10");
+        FunkyvalRegistry.Version second = registry.publish(rules);
+        assertEquals(       second.getNumber()                      , 2     );
+        assertSame(         second.get("asleep")                    , asleep);
+        assertFalse(        second.get("valid").evaluateBoolean(v)      );
+        assertTrue(         first.get("valid").evaluateBoolean(v)       );
+        
+        rules.remove("asleep");
+        registry.publish(rules);
+        assertNull(         registry.get("asleep")                      );
+        
+        assertTrue(         registry.rollback()                         );
+        assertSame(         registry.getVersion()                   , second);
+        assertFalse(        registry.rollback()                         );
+        assertEquals(       registry.publish(rules).getNumber()     , 4     );
+    }
+    
 }
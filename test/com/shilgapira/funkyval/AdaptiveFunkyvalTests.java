@@ -0,0 +1,108 @@
+package com.shilgapira.funkyval;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import com.shilgapira.funkyval.OperatorFunkyval.Specialization;
+
+/**
+ * Checks the specialization state of adaptive operators, which is only visible
+ * from within the package.
+ */
+public class AdaptiveFunkyvalTests {
+    
+    private Map<String, String> v;
+    
+    private static OperatorFunkyval op(String s, boolean adaptive) {
+        return (OperatorFunkyval) Funkyval.fromExpression(s, adaptive);
+    }
+    
+    private void repeat(Funkyval f, int times) {
+        for (int i = 0; i < times; i++) {
+            f.evaluateString(v);
+        }
+    }
+    
+    @Before
+    public void setup() {
+        v = new HashMap<String, String>();
+        v.put("door", "shut");
+        v.put("awake", "1");
+        v.put("hungry", "0");
+    }
+    
+    @Test
+    public void testSpecialize() {
+        OperatorFunkyval and = op("awake && hungry", true);
+        repeat(and, OperatorFunkyval.SPECIALIZE_THRESHOLD - 1);
+        assertEquals(       and.getSpecialization()     , Specialization.GENERIC    );
+        repeat(and, 1);
+        assertEquals(       and.getSpecialization()     , Specialization.BOOLEAN    );
+        
+        OperatorFunkyval not = op("!hungry", true);
+        repeat(not, OperatorFunkyval.SPECIALIZE_THRESHOLD);
+        assertEquals(       not.getSpecialization()     , Specialization.BOOLEAN    );
+        
+        OperatorFunkyval equal = op("door == shut", true);
+        repeat(equal, OperatorFunkyval.SPECIALIZE_THRESHOLD);
+        assertEquals(       equal.getSpecialization()   , Specialization.STRING     );
+        
+        OperatorFunkyval generic = op("door == shut", false);
+        repeat(generic, OperatorFunkyval.SPECIALIZE_THRESHOLD);
+        assertEquals(       generic.getSpecialization() , Specialization.GENERIC    );
+    }
+    
+    @Test
+    public void testDeoptimize() {
+        OperatorFunkyval and = op("awake && hungry", true);
+        repeat(and, OperatorFunkyval.SPECIALIZE_THRESHOLD);
+        assertEquals(       and.getSpecialization()     , Specialization.BOOLEAN    );
+        
+        v.put("hungry", "yes");
+        assertTrue(         and.evaluateBoolean(v)                                  );
+        assertEquals(       and.getSpecialization()     , Specialization.GENERIC    );
+        assertTrue(         and.isAdaptive()                                        );
+        
+        OperatorFunkyval equal = op("door == shut", true);
+        repeat(equal, OperatorFunkyval.SPECIALIZE_THRESHOLD);
+        v.put("door", "true");
+        v.put("shut", "yes");
+        assertTrue(         equal.evaluateBoolean(v)                                );
+        assertEquals(       equal.getSpecialization()   , Specialization.GENERIC    );
+    }
+    
+    @Test
+    public void testGiveUpAfterDeopts() {
+        OperatorFunkyval and = op("awake && hungry", true);
+        for (int i = 0; i < OperatorFunkyval.MAX_DEOPTS; i++) {
+            assertTrue(     and.isAdaptive()                                        );
+            v.put("hungry", "0");
+            repeat(and, OperatorFunkyval.SPECIALIZE_THRESHOLD);
+            assertEquals(   and.getSpecialization()     , Specialization.BOOLEAN    );
+            v.put("hungry", "yes");
+            repeat(and, 1);
+            assertEquals(   and.getSpecialization()     , Specialization.GENERIC    );
+        }
+        assertFalse(        and.isAdaptive()                                        );
+        
+        v.put("hungry", "0");
+        repeat(and, OperatorFunkyval.SPECIALIZE_THRESHOLD);
+        assertEquals(       and.getSpecialization()     , Specialization.GENERIC    );
+    }
+    
+    @Test
+    public void testGiveUpWhenUnsettled() {
+        OperatorFunkyval and = op("awake && hungry", true);
+        for (int i = 0; i < OperatorFunkyval.PROFILE_LIMIT; i++) {
+            assertTrue(     and.isAdaptive()                                        );
+            v.put("hungry", (i % 500 == 0) ? "yes" : "0");
+            repeat(and, 1);
+            assertEquals(   and.getSpecialization()     , Specialization.GENERIC    );
+        }
+        assertFalse(        and.isAdaptive()                                        );
+    }
+    
+}